@@ -0,0 +1,259 @@
+/*-
+ * +======================================================================+
+ * Telegram
+ * ---
+ * Copyright (C) 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.drivers.telegram;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Matches bot commands (i.e. '{@code /command@botname args}') against a set of
+ * registered command names.
+ * <p>
+ * Registered commands are compiled into an immutable trie that is replaced as
+ * a whole on every registration, so that matching never requires locking and
+ * walks the message text at most once.
+ *
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+class CommandRouter {
+
+	/**
+	 * Telegram commands can only contain latin letters, digits and underscores
+	 */
+	private static final int ALPHABET_SIZE = 26 + 10 + 1;
+	private static final int MAX_COMMAND_LENGTH = 32;
+
+	/**
+	 * Result of a successful match
+	 */
+	static class Match {
+
+		final String command;
+		final String argsText;
+		final String[] args;
+
+		private Match(String command, String argsText, String[] args) {
+			this.command = command;
+			this.argsText = argsText;
+			this.args = args;
+		}
+	}
+
+	private static class Node {
+		private final Node[] children = new Node[ALPHABET_SIZE];
+		private String command;
+
+		private Node copy() {
+			Node n = new Node();
+			n.command = command;
+			for (int i = 0; i < ALPHABET_SIZE; i++) {
+				if (children[i] != null) {
+					n.children[i] = children[i].copy();
+				}
+			}
+			return n;
+		}
+	}
+
+	private volatile Node root = new Node();
+
+	/**
+	 * Registers the specified commands.
+	 *
+	 * @param commands
+	 *            the command names, with or without the leading '/'
+	 * @throws IllegalArgumentException
+	 *             if any of the specified names is not a valid command name
+	 */
+	synchronized void register(Collection<String> commands) {
+		Node r = root.copy();
+		for (String command : commands) {
+			String c = normalize(command);
+			Node n = r;
+			for (int i = 0; i < c.length(); i++) {
+				int idx = indexOf(c.charAt(i));
+				if (n.children[idx] == null) {
+					n.children[idx] = new Node();
+				}
+				n = n.children[idx];
+			}
+			n.command = c;
+		}
+		root = r;
+	}
+
+	/**
+	 * Unregisters the specified command.
+	 *
+	 * @param command
+	 *            the command name, with or without the leading '/'
+	 */
+	synchronized void unregister(String command) {
+		String c = normalize(command);
+		Node r = root.copy();
+		Node n = r;
+		for (int i = 0; i < c.length() && n != null; i++) {
+			n = n.children[indexOf(c.charAt(i))];
+		}
+		if (n != null) {
+			n.command = null;
+		}
+		root = r;
+	}
+
+	/**
+	 * Matches the specified message text against the registered commands.
+	 *
+	 * @param text
+	 *            the message text
+	 * @param botName
+	 *            the username of this bot, used to discard commands addressed
+	 *            to other bots; can be {@code null}
+	 * @return the match, or {@code null} if the text does not start with a
+	 *         registered command
+	 */
+	Match match(String text, String botName) {
+		if (text == null || text.length() < 2 || text.charAt(0) != '/') {
+			return null;
+		}
+		Node n = root;
+		int len = text.length();
+		int i = 1;
+		for (; i < len; i++) {
+			char ch = text.charAt(i);
+			if (ch == '@' || Character.isWhitespace(ch)) {
+				break;
+			}
+			int idx = indexOfOrNeg(ch);
+			if (idx < 0 || (n = n.children[idx]) == null) {
+				return null;
+			}
+		}
+		if (n.command == null) {
+			return null;
+		}
+
+		if (i < len && text.charAt(i) == '@') {
+			int start = ++i;
+			while (i < len && !Character.isWhitespace(text.charAt(i))) {
+				i++;
+			}
+			if (botName != null && (i - start != botName.length()
+					|| !text.regionMatches(true, start, botName, 0, i - start))) {
+				return null;
+			}
+		}
+
+		String argsText = text.substring(i).trim();
+		return new Match(n.command, argsText, split(argsText));
+	}
+
+	/**
+	 *
+	 * @param argsText
+	 * @return
+	 */
+	private static String[] split(String argsText) {
+		if (argsText.isEmpty()) {
+			return new String[0];
+		}
+		List<String> args = new ArrayList<>();
+		int len = argsText.length();
+		int start = -1;
+		for (int i = 0; i < len; i++) {
+			if (Character.isWhitespace(argsText.charAt(i))) {
+				if (start >= 0) {
+					args.add(argsText.substring(start, i));
+					start = -1;
+				}
+			} else if (start < 0) {
+				start = i;
+			}
+		}
+		if (start >= 0) {
+			args.add(argsText.substring(start));
+		}
+		return args.toArray(new String[args.size()]);
+	}
+
+	/**
+	 *
+	 * @param command
+	 * @return
+	 */
+	private static String normalize(String command) {
+		String c = command.trim().toLowerCase(Locale.ROOT);
+		if (c.startsWith("/")) {
+			c = c.substring(1);
+		}
+		if (c.isEmpty() || c.length() > MAX_COMMAND_LENGTH) {
+			throw new IllegalArgumentException("Invalid command: " + command);
+		}
+		for (int i = 0; i < c.length(); i++) {
+			if (indexOfOrNeg(c.charAt(i)) < 0) {
+				throw new IllegalArgumentException("Invalid command: " + command);
+			}
+		}
+		return c;
+	}
+
+	/**
+	 *
+	 * @param ch
+	 * @return
+	 */
+	private static int indexOf(char ch) {
+		int idx = indexOfOrNeg(ch);
+		if (idx < 0) {
+			throw new IllegalArgumentException("Invalid command character: " + ch);
+		}
+		return idx;
+	}
+
+	/**
+	 *
+	 * @param ch
+	 * @return
+	 */
+	private static int indexOfOrNeg(char ch) {
+		if (ch >= 'a' && ch <= 'z') {
+			return ch - 'a';
+		}
+		if (ch >= 'A' && ch <= 'Z') {
+			return ch - 'A';
+		}
+		if (ch >= '0' && ch <= '9') {
+			return 26 + ch - '0';
+		}
+		if (ch == '_') {
+			return 36;
+		}
+		return -1;
+	}
+
+}
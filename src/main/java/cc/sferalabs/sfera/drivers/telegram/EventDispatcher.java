@@ -0,0 +1,430 @@
+/*-
+ * +======================================================================+
+ * Telegram
+ * ---
+ * Copyright (C) 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.drivers.telegram;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import cc.sferalabs.libs.telegram.bot.api.types.Message;
+import cc.sferalabs.sfera.drivers.telegram.events.TelegramCallbackQueryEvent;
+import cc.sferalabs.sfera.drivers.telegram.events.TelegramCommandEvent;
+import cc.sferalabs.sfera.drivers.telegram.events.TelegramEvent;
+import cc.sferalabs.sfera.drivers.telegram.events.TelegramMessageEvent;
+import cc.sferalabs.sfera.drivers.telegram.events.TelegramOverloadEvent;
+
+/**
+ * Bounded hand-off between the polling thread and the event Bus.
+ * <p>
+ * Events are posted to the Bus by a dedicated thread, in the same order they
+ * were received. When the queue is full, the configured {@link Policy} decides
+ * whether the polling thread waits or some events are discarded. The number of
+ * discarded events, together with the number of messages discarded by the
+ * driver for being older than their time-to-live, is periodically reported
+ * with a {@link TelegramOverloadEvent}.
+ * <p>
+ * The queue outlives driver restarts: when stopped, the dispatching thread
+ * keeps posting the queued events, whose updates have already been confirmed
+ * to the Telegram server, and exits once the queue is empty. If the queue
+ * settings change, the queued events are handed over to the new dispatcher
+ * instead, so that a single thread posts them at any time.
+ *
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+class EventDispatcher implements Runnable {
+
+	/**
+	 * Behavior when the queue is full
+	 */
+	enum Policy {
+		/**
+		 * Wait for space to become available
+		 */
+		BLOCK,
+		/**
+		 * Discard the oldest queued event
+		 */
+		DROP_OLDEST,
+		/**
+		 * Discard the oldest queued event of one of the droppable types, or the
+		 * new event if it is of a droppable type; wait otherwise
+		 */
+		DROP_TYPE,
+		/**
+		 * Discard the new message if it has the same text of a queued message
+		 * from the same chat; wait otherwise
+		 */
+		COALESCE;
+
+		static Policy parse(String value) {
+			return valueOf(value.trim().toUpperCase(Locale.ROOT));
+		}
+	}
+
+	private static final long OVERLOAD_REPORT_INTERVAL = 1000;
+	private static final Set<String> TYPES = new HashSet<>(
+			Arrays.asList("message", "command", "callback", "update"));
+
+	private final Telegram driver;
+	private final int capacity;
+	private final Policy policy;
+	private final Set<String> droppableTypes;
+	private final ArrayDeque<TelegramEvent> queue;
+	private final Map<String, Integer> pendingKeys = new HashMap<>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final Condition stopped = lock.newCondition();
+	private long dropped;
+	private long coalesced;
+	private long expired;
+	private long lastReport;
+	private boolean running;
+	private boolean closing;
+
+	/**
+	 *
+	 * @param driver
+	 *            the driver instance
+	 * @param capacity
+	 *            maximum number of queued events
+	 * @param policy
+	 *            behavior when the queue is full
+	 * @param droppableTypes
+	 *            types of events that can be dropped with policy
+	 *            {@link Policy#DROP_TYPE}: "message", "command", "callback" or
+	 *            "update"
+	 */
+	EventDispatcher(Telegram driver, int capacity, Policy policy, Collection<String> droppableTypes) {
+		this.driver = driver;
+		this.capacity = capacity;
+		this.policy = policy;
+		this.droppableTypes = new HashSet<>(droppableTypes);
+		this.queue = new ArrayDeque<>(capacity);
+	}
+
+	/**
+	 * Returns whether the specified string is a valid event type for
+	 * {@link Policy#DROP_TYPE}.
+	 *
+	 * @param type
+	 *            the type
+	 * @return {@code true} if the type is one of "message", "command",
+	 *         "callback" or "update"
+	 */
+	static boolean isType(String type) {
+		return TYPES.contains(type);
+	}
+
+	/**
+	 * Returns whether this dispatcher has the specified settings.
+	 *
+	 * @param capacity
+	 *            maximum number of queued events
+	 * @param policy
+	 *            behavior when the queue is full
+	 * @param droppableTypes
+	 *            types of events that can be dropped
+	 * @return {@code true} if this dispatcher has the specified settings
+	 */
+	boolean hasSettings(int capacity, Policy policy, Collection<String> droppableTypes) {
+		return this.capacity == capacity && this.policy == policy
+				&& this.droppableTypes.equals(new HashSet<>(droppableTypes));
+	}
+
+	/**
+	 * Starts the dispatching thread, if not already running
+	 */
+	void start() {
+		lock.lock();
+		try {
+			closing = false;
+			if (!running) {
+				running = true;
+				Thread thread = new Thread(this, driver.getId() + "-dispatcher");
+				thread.setDaemon(true);
+				thread.start();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Makes the dispatching thread exit once all the queued events have been
+	 * posted
+	 */
+	void stop() {
+		lock.lock();
+		try {
+			closing = true;
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for the dispatching thread to exit after {@link #stop()}.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	void awaitTermination() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (running) {
+				stopped.await();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Moves the queued events and the pending overload counts to the
+	 * specified dispatcher, which must not be started yet, and waits for the
+	 * dispatching thread to finish posting the current event and exit.
+	 *
+	 * @param next
+	 *            the dispatcher replacing this one
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	void handOver(EventDispatcher next) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			for (TelegramEvent event : queue) {
+				next.add(event);
+			}
+			next.dropped += dropped;
+			next.coalesced += coalesced;
+			next.expired += expired;
+			queue.clear();
+			pendingKeys.clear();
+			dropped = 0;
+			coalesced = 0;
+			expired = 0;
+			closing = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+			while (running) {
+				stopped.await();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues the specified event to be posted to the Bus.
+	 *
+	 * @param event
+	 *            the event
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for space in the queue
+	 */
+	void dispatch(TelegramEvent event) throws InterruptedException {
+		String key = policy == Policy.COALESCE ? coalesceKey(event) : null;
+		lock.lockInterruptibly();
+		try {
+			while (queue.size() >= capacity) {
+				if (policy == Policy.DROP_OLDEST) {
+					remove(queue.pollFirst());
+					dropped++;
+				} else if (policy == Policy.DROP_TYPE) {
+					if (!dropOldestDroppable()) {
+						if (droppableTypes.contains(typeOf(event))) {
+							dropped++;
+							return;
+						}
+						notFull.await();
+					}
+				} else if (key != null && pendingKeys.containsKey(key)) {
+					coalesced++;
+					return;
+				} else {
+					notFull.await();
+				}
+			}
+			add(event);
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds the specified number of messages discarded for being older than
+	 * their time-to-live to the next overload report.
+	 *
+	 * @param count
+	 *            number of expired messages
+	 */
+	void expired(long count) {
+		lock.lock();
+		try {
+			expired += count;
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void run() {
+		boolean exit = false;
+		while (!exit) {
+			TelegramEvent event = null;
+			TelegramOverloadEvent overload = null;
+			lock.lock();
+			try {
+				while (queue.isEmpty() && !closing && expired == 0) {
+					notEmpty.awaitUninterruptibly();
+				}
+				if (!queue.isEmpty()) {
+					event = queue.pollFirst();
+					remove(event);
+					notFull.signal();
+				} else if (closing) {
+					exit = true;
+					running = false;
+					stopped.signalAll();
+				}
+
+				long now = System.currentTimeMillis();
+				if ((dropped > 0 || coalesced > 0 || expired > 0)
+						&& (queue.isEmpty() || now - lastReport >= OVERLOAD_REPORT_INTERVAL)) {
+					overload = new TelegramOverloadEvent(driver, dropped, coalesced, expired);
+					dropped = 0;
+					coalesced = 0;
+					expired = 0;
+					lastReport = now;
+				}
+			} finally {
+				lock.unlock();
+			}
+
+			if (event != null) {
+				driver.postEvent(event);
+			}
+			if (overload != null) {
+				driver.postEvent(overload);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param event
+	 */
+	private void add(TelegramEvent event) {
+		queue.addLast(event);
+		if (policy == Policy.COALESCE) {
+			String key = coalesceKey(event);
+			if (key != null) {
+				pendingKeys.merge(key, 1, Integer::sum);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	private boolean dropOldestDroppable() {
+		Iterator<TelegramEvent> it = queue.iterator();
+		while (it.hasNext()) {
+			TelegramEvent e = it.next();
+			if (droppableTypes.contains(typeOf(e))) {
+				it.remove();
+				remove(e);
+				dropped++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @param event
+	 */
+	private void remove(TelegramEvent event) {
+		if (policy != Policy.COALESCE) {
+			return;
+		}
+		String key = coalesceKey(event);
+		if (key != null) {
+			pendingKeys.computeIfPresent(key, (k, n) -> n > 1 ? n - 1 : null);
+		}
+	}
+
+	/**
+	 *
+	 * @param event
+	 * @return
+	 */
+	private static String typeOf(TelegramEvent event) {
+		if (event instanceof TelegramMessageEvent) {
+			return "message";
+		}
+		if (event instanceof TelegramCommandEvent) {
+			return "command";
+		}
+		if (event instanceof TelegramCallbackQueryEvent) {
+			return "callback";
+		}
+		return "update";
+	}
+
+	/**
+	 *
+	 * @param event
+	 * @return
+	 */
+	private static String coalesceKey(TelegramEvent event) {
+		Message message = null;
+		if (event instanceof TelegramMessageEvent) {
+			message = ((TelegramMessageEvent) event).getValue();
+		} else if (event instanceof TelegramCommandEvent) {
+			message = ((TelegramCommandEvent) event).getValue();
+		}
+		if (message == null || message.getText() == null) {
+			return null;
+		}
+		return message.getChat().getId() + ":" + message.getText();
+	}
+
+}
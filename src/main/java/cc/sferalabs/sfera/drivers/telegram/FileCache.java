@@ -0,0 +1,324 @@
+/*-
+ * +======================================================================+
+ * Telegram
+ * ---
+ * Copyright (C) 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.drivers.telegram;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.json.simple.parser.ParseException;
+
+import cc.sferalabs.libs.telegram.bot.api.ResponseError;
+
+/**
+ * Size-bounded LRU cache of files downloaded from the Telegram servers.
+ * <p>
+ * Files are stored in the cache directory named after their
+ * 'file_unique_id', so the same content received in different messages is
+ * stored once. Downloads are streamed directly to disk and concurrent requests
+ * for the same file share a single download.
+ *
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+class FileCache {
+
+	private static final int MAX_FILE_IDS = 1000;
+
+	private final Telegram driver;
+	private final Path dir;
+	private final long maxSize;
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, String> fileNames = new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > MAX_FILE_IDS;
+		}
+	};
+	private final ConcurrentHashMap<String, CompletableFuture<Path>> downloads = new ConcurrentHashMap<>();
+	private long size;
+
+	/**
+	 *
+	 * @param driver
+	 *            the driver instance
+	 * @param dir
+	 *            the cache directory
+	 * @param maxSize
+	 *            maximum total size of the cached files in bytes
+	 * @throws IOException
+	 *             if an I/O error occurs loading the cache content
+	 */
+	FileCache(Telegram driver, Path dir, long maxSize) throws IOException {
+		this.driver = driver;
+		this.dir = dir;
+		this.maxSize = maxSize;
+		load();
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	private void load() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+			for (Path p : ds) {
+				if (p.getFileName().toString().endsWith(".tmp")) {
+					Files.deleteIfExists(p);
+				} else {
+					files.add(p);
+				}
+			}
+		} catch (NoSuchFileException e) {
+			return;
+		}
+		Map<Path, FileTime> times = new HashMap<>();
+		for (Path p : files) {
+			times.put(p, Files.getLastModifiedTime(p));
+		}
+		files.sort((a, b) -> times.get(a).compareTo(times.get(b)));
+		synchronized (entries) {
+			for (Path p : files) {
+				long s = Files.size(p);
+				entries.put(p.getFileName().toString(), s);
+				size += s;
+			}
+			evict();
+		}
+	}
+
+	/**
+	 * Returns the path of the cached copy of the specified file, downloading it
+	 * if not in cache.
+	 *
+	 * @param fileId
+	 *            the file identifier
+	 * @return the path of the cached file
+	 * @throws IOException
+	 *             if an I/O exception occurs
+	 * @throws ParseException
+	 *             if an error occurs while parsing the server response
+	 * @throws ResponseError
+	 *             if the server returned an error response
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the download
+	 */
+	Path get(String fileId) throws IOException, ParseException, ResponseError, InterruptedException {
+		Path cached = lookup(fileId);
+		if (cached != null) {
+			return cached;
+		}
+
+		CompletableFuture<Path> download = new CompletableFuture<>();
+		CompletableFuture<Path> existing = downloads.putIfAbsent(fileId, download);
+		if (existing != null) {
+			return await(existing);
+		}
+		try {
+			download.complete(download(fileId));
+		} catch (Exception e) {
+			download.completeExceptionally(e);
+		} finally {
+			downloads.remove(fileId, download);
+		}
+		return await(download);
+	}
+
+	/**
+	 *
+	 * @param fileId
+	 * @return
+	 */
+	private Path lookup(String fileId) {
+		synchronized (entries) {
+			String name = fileNames.get(fileId);
+			if (name == null || entries.get(name) == null) {
+				return null;
+			}
+			Path p = dir.resolve(name);
+			if (!Files.exists(p)) {
+				remove(name);
+				return null;
+			}
+			try {
+				// keeps the access order across restarts
+				Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+			} catch (IOException e) {
+				driver.logDebug("Error updating access time of cached file " + name, e);
+			}
+			return p;
+		}
+	}
+
+	/**
+	 *
+	 * @param fileId
+	 * @return
+	 * @throws IOException
+	 * @throws ParseException
+	 * @throws ResponseError
+	 */
+	private Path download(String fileId) throws IOException, ParseException, ResponseError {
+		Map<String, Object> file = driver.getFile(fileId);
+		String filePath = (String) file.get("file_path");
+		if (filePath == null) {
+			throw new IOException("File not available for download: " + fileId);
+		}
+		Object uniqueId = file.get("file_unique_id");
+		String name = toFileName(uniqueId != null ? uniqueId.toString() : fileId, filePath);
+
+		synchronized (entries) {
+			if (entries.get(name) != null && Files.exists(dir.resolve(name))) {
+				fileNames.put(fileId, name);
+				return dir.resolve(name);
+			}
+		}
+
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, name, ".tmp");
+		try {
+			driver.fetchFile(filePath, tmp);
+			Path target = dir.resolve(name);
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			long s = Files.size(target);
+			synchronized (entries) {
+				Long old = entries.put(name, s);
+				if (old != null) {
+					size -= old;
+				}
+				size += s;
+				fileNames.put(fileId, name);
+				evict();
+			}
+			return target;
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Must be called holding the lock on {@link #entries}
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+		while (size > maxSize && entries.size() > 1 && it.hasNext()) {
+			Map.Entry<String, Long> e = it.next();
+			try {
+				Files.deleteIfExists(dir.resolve(e.getKey()));
+			} catch (IOException ex) {
+				driver.logError("Error deleting cached file " + e.getKey(), ex);
+			}
+			size -= e.getValue();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Must be called holding the lock on {@link #entries}
+	 *
+	 * @param name
+	 */
+	private void remove(String name) {
+		Long s = entries.remove(name);
+		if (s != null) {
+			size -= s;
+		}
+	}
+
+	/**
+	 *
+	 * @param future
+	 * @return
+	 * @throws IOException
+	 * @throws ParseException
+	 * @throws ResponseError
+	 * @throws InterruptedException
+	 */
+	private static Path await(CompletableFuture<Path> future)
+			throws IOException, ParseException, ResponseError, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof ParseException) {
+				throw (ParseException) cause;
+			}
+			if (cause instanceof ResponseError) {
+				throw (ResponseError) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @param filePath
+	 * @return
+	 */
+	private static String toFileName(String key, String filePath) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_') {
+				sb.append(c);
+			} else {
+				sb.append('_');
+			}
+		}
+		int dot = filePath.lastIndexOf('.');
+		if (dot > filePath.lastIndexOf('/')) {
+			String ext = filePath.substring(dot);
+			if (ext.length() <= 8 && ext.substring(1).chars().allMatch(Character::isLetterOrDigit)) {
+				sb.append(ext);
+			}
+		}
+		return sb.toString();
+	}
+
+}
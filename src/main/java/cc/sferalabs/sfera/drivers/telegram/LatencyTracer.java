@@ -0,0 +1,274 @@
+/*-
+ * +======================================================================+
+ * Telegram
+ * ---
+ * Copyright (C) 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.drivers.telegram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the time spent by received updates in each processing stage, from
+ * the receipt to the replies sent to the same chat.
+ * <p>
+ * Samples are kept in a fixed-size ring buffer, overwriting the oldest ones.
+ * Each sample is an immutable object published with an ordered store and
+ * tagged with its sequence number, so readers skip the slots that are reserved
+ * but not written yet, or already reused, and never see partially written
+ * samples.
+ * <p>
+ * Trace IDs are unique across tracers, so that the events queued before a
+ * driver restart cannot be mistaken for the ones traced afterwards.
+ *
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+class LatencyTracer {
+
+	/**
+	 * Processing stages
+	 */
+	enum Stage {
+		/**
+		 * getUpdates long poll request
+		 */
+		POLL,
+		/**
+		 * Filtering and routing of the update in the polling thread
+		 */
+		PROCESS,
+		/**
+		 * From the receipt of the update to its delivery to the Bus
+		 */
+		QUEUE,
+		/**
+		 * Bus dispatching to the handlers
+		 */
+		BUS,
+		/**
+		 * Outbound request to the Telegram service
+		 */
+		SEND,
+		/**
+		 * From the receipt of the update to the completion of a reply sent to
+		 * the same chat while the update is being handled
+		 */
+		REPLY
+	}
+
+	private static final double[] PERCENTILES = { 50, 90, 99 };
+
+	private static final AtomicLong TRACE_IDS = new AtomicLong();
+
+	private final AtomicLong cursor = new AtomicLong();
+	private final int capacity;
+	private final AtomicReferenceArray<Sample> samples;
+	private final Map<Long, long[]> activeChats = new ConcurrentHashMap<>();
+
+	/**
+	 *
+	 * @param capacity
+	 *            number of samples kept
+	 */
+	LatencyTracer(int capacity) {
+		this.capacity = capacity;
+		this.samples = new AtomicReferenceArray<>(capacity);
+	}
+
+	/**
+	 * Returns the number of samples kept
+	 *
+	 * @return the number of samples kept
+	 */
+	int getCapacity() {
+		return capacity;
+	}
+
+	private static class Sample {
+		private final long seq;
+		private final long traceId;
+		private final Stage stage;
+		private final long nanos;
+		private final long timestamp;
+
+		private Sample(long seq, long traceId, Stage stage, long nanos, long timestamp) {
+			this.seq = seq;
+			this.traceId = traceId;
+			this.stage = stage;
+			this.nanos = nanos;
+			this.timestamp = timestamp;
+		}
+	}
+
+	/**
+	 * Returns a new trace ID
+	 *
+	 * @return a new trace ID
+	 */
+	long newTrace() {
+		return TRACE_IDS.incrementAndGet();
+	}
+
+	/**
+	 * Links the replies sent to the specified chat to the specified trace,
+	 * until {@link #deactivate(long, long[])} is called.
+	 *
+	 * @param chatId
+	 *            the chat ID
+	 * @param traceId
+	 *            the trace ID
+	 * @param receivedNanos
+	 *            {@link System#nanoTime()} at the receipt of the update
+	 * @return the handle to pass to {@link #deactivate(long, long[])}
+	 */
+	long[] activate(long chatId, long traceId, long receivedNanos) {
+		long[] active = new long[] { traceId, receivedNanos };
+		activeChats.put(chatId, active);
+		return active;
+	}
+
+	/**
+	 * Stops linking the replies sent to the specified chat to the trace
+	 * activated with the specified handle.
+	 *
+	 * @param chatId
+	 *            the chat ID
+	 * @param active
+	 *            the handle returned by
+	 *            {@link #activate(long, long, long)}
+	 */
+	void deactivate(long chatId, long[] active) {
+		activeChats.remove(chatId, active);
+	}
+
+	/**
+	 * Records an outbound request to the specified chat.
+	 *
+	 * @param chatId
+	 *            the chat ID, or {@code 0} if not related to a chat
+	 * @param startNanos
+	 *            {@link System#nanoTime()} at the start of the request
+	 */
+	void recordSend(long chatId, long startNanos) {
+		long now = System.nanoTime();
+		long[] active = chatId == 0 ? null : activeChats.get(chatId);
+		long traceId = active == null ? 0 : active[0];
+		record(traceId, Stage.SEND, now - startNanos);
+		if (active != null) {
+			record(traceId, Stage.REPLY, now - active[1]);
+		}
+	}
+
+	/**
+	 * Records a sample.
+	 *
+	 * @param traceId
+	 *            the trace ID, or {@code 0} if not related to an update
+	 * @param stage
+	 *            the processing stage
+	 * @param nanos
+	 *            the duration in nanoseconds
+	 */
+	void record(long traceId, Stage stage, long nanos) {
+		long seq = cursor.getAndIncrement();
+		samples.lazySet((int) (seq % capacity),
+				new Sample(seq, traceId, stage, nanos, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Returns the completely written samples currently in the buffer, oldest
+	 * first
+	 *
+	 * @return the samples currently in the buffer
+	 */
+	private List<Sample> snapshot() {
+		long end = cursor.get();
+		long start = Math.max(0, end - capacity);
+		List<Sample> list = new ArrayList<>((int) (end - start));
+		for (long c = start; c < end; c++) {
+			Sample s = samples.get((int) (c % capacity));
+			if (s != null && s.seq == c) {
+				list.add(s);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the recorded samples, oldest first, one per line.
+	 *
+	 * @return the recorded samples
+	 */
+	String dump() {
+		StringBuilder sb = new StringBuilder();
+		for (Sample s : snapshot()) {
+			sb.append(s.timestamp).append(' ').append(s.traceId).append(' ').append(s.stage).append(' ')
+					.append(String.format(Locale.ROOT, "%.3f", s.nanos / 1e6)).append("ms\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns count, percentiles and maximum, in milliseconds, of the recorded
+	 * samples of each stage.
+	 *
+	 * @return the statistics of each stage
+	 */
+	Map<String, Map<String, Double>> stats() {
+		List<Sample> snapshot = snapshot();
+		Stage[] values = Stage.values();
+		long[][] durations = new long[values.length][snapshot.size()];
+		int[] counts = new int[values.length];
+		for (Sample sample : snapshot) {
+			int s = sample.stage.ordinal();
+			durations[s][counts[s]++] = sample.nanos;
+		}
+
+		Map<String, Map<String, Double>> stats = new LinkedHashMap<>();
+		for (int s = 0; s < values.length; s++) {
+			int n = counts[s];
+			if (n == 0) {
+				continue;
+			}
+			long[] d = Arrays.copyOf(durations[s], n);
+			Arrays.sort(d);
+			Map<String, Double> st = new LinkedHashMap<>();
+			st.put("count", (double) n);
+			for (double p : PERCENTILES) {
+				int idx = (int) Math.ceil(p / 100 * n) - 1;
+				st.put("p" + (int) p, d[Math.max(0, idx)] / 1e6);
+			}
+			st.put("max", d[n - 1] / 1e6);
+			stats.put(values[s].name().toLowerCase(Locale.ROOT), st);
+		}
+		return stats;
+	}
+
+}
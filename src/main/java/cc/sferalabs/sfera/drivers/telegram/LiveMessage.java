@@ -0,0 +1,250 @@
+/*-
+ * +======================================================================+
+ * Telegram
+ * ---
+ * Copyright (C) 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.drivers.telegram;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.parser.ParseException;
+
+import cc.sferalabs.libs.telegram.bot.api.ResponseError;
+import cc.sferalabs.libs.telegram.bot.api.types.Message;
+
+/**
+ * A message that is sent once and then updated in place, useful to show live
+ * values without flooding the chat.
+ * <p>
+ * Updates are debounced: the text is pushed at most once per interval and
+ * only the latest text set within the interval is sent. Texts equal to the
+ * one currently displayed are not sent at all. If the message gets deleted
+ * from the chat, it is sent again on the next update.
+ * <p>
+ * Failed updates are retried at the next interval, unless Telegram rejects
+ * them permanently (e.g. the bot was blocked or the chat does not exist), in
+ * which case the live message is closed. Updates failing because the driver is
+ * stopped are not retried until the driver is started again.
+ * <p>
+ * Instances are obtained with {@link Telegram#createLiveMessage(long)}.
+ * 
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+public class LiveMessage {
+
+	private final Telegram driver;
+	private final ScheduledExecutorService executor;
+	private final long chatId;
+	private final String parseMode;
+	private final long interval;
+	private Long messageId;
+	private String pending;
+	private String lastText;
+	private long lastPush;
+	private boolean scheduled;
+	private boolean closed;
+
+	/**
+	 * 
+	 * @param driver
+	 * @param executor
+	 * @param chatId
+	 * @param parseMode
+	 * @param interval
+	 */
+	LiveMessage(Telegram driver, ScheduledExecutorService executor, long chatId, String parseMode,
+			long interval) {
+		this.driver = driver;
+		this.executor = executor;
+		this.chatId = chatId;
+		this.parseMode = parseMode;
+		this.interval = interval;
+	}
+
+	/**
+	 * Sets the text of this message. The text will be sent, or the existing
+	 * message edited, within the configured interval.
+	 * 
+	 * @param text
+	 *            the new text of the message
+	 */
+	public synchronized void update(String text) {
+		if (closed || text == null) {
+			return;
+		}
+		pending = text;
+		schedule();
+	}
+
+	/**
+	 * Pushes the text left pending while the driver was stopped
+	 */
+	synchronized void resume() {
+		if (pending != null) {
+			schedule();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private void schedule() {
+		if (!scheduled) {
+			long delay = Math.max(0, lastPush + interval - System.currentTimeMillis());
+			try {
+				executor.schedule(this::push, delay, TimeUnit.MILLISECONDS);
+				scheduled = true;
+			} catch (RejectedExecutionException e) {
+				// pending text is kept and pushed on the next update
+				driver.logError("Error scheduling live message update in chat " + chatId, e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the ID of the displayed message.
+	 * 
+	 * @return the ID of the displayed message or {@code null} if not sent yet
+	 */
+	public synchronized Long getMessageId() {
+		return messageId;
+	}
+
+	/**
+	 * Returns the ID of the chat this message is sent to.
+	 * 
+	 * @return the ID of the chat
+	 */
+	public long getChatId() {
+		return chatId;
+	}
+
+	/**
+	 * Stops updating this message. Pending updates are discarded, the message
+	 * already sent is left in the chat.
+	 */
+	public synchronized void close() {
+		closed = true;
+		pending = null;
+	}
+
+	/**
+	 * Returns whether this message has been closed, either by
+	 * {@link #close()} or because Telegram permanently rejected an update.
+	 * 
+	 * @return {@code true} if this message is not updated anymore
+	 */
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * 
+	 */
+	private void push() {
+		String text;
+		Long id;
+		synchronized (this) {
+			scheduled = false;
+			text = pending;
+			pending = null;
+			if (closed || text == null || text.equals(lastText)) {
+				return;
+			}
+			id = messageId;
+			lastPush = System.currentTimeMillis();
+		}
+
+		try {
+			if (id != null) {
+				try {
+					driver.editMessageText(chatId, id, text, parseMode);
+				} catch (ResponseError e) {
+					String description = String.valueOf(e.getMessage());
+					if (description.contains("message is not modified")) {
+						// already displayed
+					} else if (description.contains("message to edit not found")) {
+						id = null;
+					} else {
+						throw e;
+					}
+				}
+			}
+			if (id == null) {
+				Message message = driver.sendTextMessage(chatId, text, parseMode);
+				id = (long) message.getInt("message_id");
+			}
+			synchronized (this) {
+				messageId = id;
+				lastText = text;
+			}
+		} catch (ResponseError e) {
+			if (isPermanent(e)) {
+				driver.logError("Error updating live message in chat " + chatId + ", closing it", e);
+				close();
+			} else {
+				retry(text, e);
+			}
+		} catch (IOException | ParseException e) {
+			retry(text, e);
+		}
+	}
+
+	/**
+	 * 
+	 * @param text
+	 * @param e
+	 */
+	private synchronized void retry(String text, Exception e) {
+		if (!driver.isRunning()) {
+			// kept until the driver is started again, see resume()
+			if (pending == null && !closed) {
+				pending = text;
+			}
+			return;
+		}
+		driver.logWarn("Error updating live message in chat " + chatId + ", retrying: " + e);
+		// retry with the latest text at the next interval
+		if (pending == null) {
+			update(text);
+		}
+	}
+
+	/**
+	 * Client errors (4xx) other than "Too Many Requests" will not go away by
+	 * retrying, e.g. "Forbidden: bot was blocked by the user" or
+	 * "Bad Request: chat not found".
+	 * 
+	 * @param e
+	 * @return
+	 */
+	private static boolean isPermanent(ResponseError e) {
+		String description = String.valueOf(e.getMessage());
+		return description.contains("Bad Request") || description.contains("Unauthorized")
+				|| description.contains("Forbidden") || description.contains("Not Found");
+	}
+
+}
@@ -24,15 +24,29 @@ package cc.sferalabs.sfera.drivers.telegram;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.json.simple.parser.ParseException;
@@ -54,8 +68,16 @@ import cc.sferalabs.libs.telegram.bot.api.types.Update;
 import cc.sferalabs.libs.telegram.bot.api.types.User;
 import cc.sferalabs.sfera.core.Configuration;
 import cc.sferalabs.sfera.drivers.Driver;
+import cc.sferalabs.sfera.drivers.telegram.events.TelegramCallbackQueryEvent;
+import cc.sferalabs.sfera.drivers.telegram.events.TelegramCommandEvent;
+import cc.sferalabs.sfera.drivers.telegram.events.TelegramEvent;
 import cc.sferalabs.sfera.drivers.telegram.events.TelegramMessageEvent;
+import cc.sferalabs.sfera.drivers.telegram.events.TelegramOverloadEvent;
 import cc.sferalabs.sfera.drivers.telegram.events.TelegramUpdateEvent;
+import cc.sferalabs.sfera.drivers.telegram.requests.AnswerCallbackQueryRequest;
+import cc.sferalabs.sfera.drivers.telegram.requests.EditMessageTextRequest;
+import cc.sferalabs.sfera.drivers.telegram.requests.GetFileRequest;
+import cc.sferalabs.sfera.drivers.telegram.types.InlineKeyboardMarkup;
 import cc.sferalabs.sfera.events.Bus;
 
 /**
@@ -70,37 +92,140 @@ public class Telegram extends Driver {
 
 	private static final int POLLING_TIMEOUT = 60;
 	private static final int REQUEST_TIMEOUT = 10000;
+	private static final int CONNECT_TIMEOUT = 5000;
+	private static final long MAX_CONNECT_RETRY_DELAY = 60000;
+	private static final CommandRouter BUILTIN_COMMANDS = new CommandRouter();
+
+	static {
+		BUILTIN_COMMANDS.register(Collections.singleton("addme"));
+	}
+
 	private Path authorizedUsersFile;
-	private TelegramBot telegram;
+	private Path botNameFile;
+	private volatile TelegramBot telegram;
+	private String token;
+	private FileCache fileCache;
+	private volatile LatencyTracer tracer;
 	private Long offset = null;
 	private String botSecret;
+	private volatile String botName;
+	private boolean connected;
+	private long connectRetryDelay;
+	private final CommandRouter commands = new CommandRouter();
+	private volatile CommandRouter configCommands = new CommandRouter();
 	private final Set<Long> authorizedUsers = new HashSet<>();
 	private long messagesTtl;
+	private long expiredMessages;
 	private boolean pollUpdates;
+	private EventDispatcher dispatcher;
+	private final ScheduledThreadPoolExecutor scheduler;
+	private ExecutorService callbacksAnswerer;
+	private boolean answerCallbackQueries;
+	private long liveMessagesInterval;
+	private final Set<LiveMessage> liveMessages = Collections
+			.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
 
 	public Telegram(String id) {
 		super(id);
+		// shared by all the live messages of this instance, so it must survive
+		// driver restarts; the thread is released when idle
+		scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, id + "-scheduler");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.setKeepAliveTime(60, TimeUnit.SECONDS);
+		scheduler.allowCoreThreadTimeOut(true);
 	}
 
 	@Override
 	protected boolean onInit(Configuration config) throws InterruptedException {
-		String token = config.get("token", null);
+		token = config.get("token", null);
 		if (token == null) {
 			log.error("Parameter 'token' not found in configuration");
 			return false;
 		}
 		botSecret = config.get("secret", null);
 		telegram = new TelegramBot(token);
+		connected = false;
+		connectRetryDelay = 1000;
 		try {
-			String botName = telegram.getBotName(5000);
-			log.info("Connected to bot: " + botName);
-		} catch (IOException | ParseException | ResponseError e) {
-			log.error("Error reaching Telegram service", e);
-			return false;
+			botNameFile = getDriverInstanceDataDir().resolve("bot");
+			List<String> lines = Files.readAllLines(botNameFile);
+			if (!lines.isEmpty() && !lines.get(0).isEmpty()) {
+				botName = lines.get(0);
+				log.debug("Cached bot name: {}", botName);
+			}
+		} catch (NoSuchFileException e) {
+			log.debug("Cached bot name not found");
+		} catch (IOException e) {
+			log.warn("Error loading cached bot name", e);
 		}
 		messagesTtl = config.get("messagesTtl", 10);
 		messagesTtl *= 1000;
 		pollUpdates = config.get("pollUpdates", true);
+		List<String> cmds = config.get("commands", null);
+		// replaces the ones of the previous configuration, while the ones
+		// registered by registerCommands() are kept
+		CommandRouter router = new CommandRouter();
+		if (cmds != null) {
+			try {
+				router.register(cmds);
+			} catch (IllegalArgumentException e) {
+				log.error("Error registering commands", e);
+				return false;
+			}
+		}
+		configCommands = router;
+		answerCallbackQueries = config.get("answerCallbackQueries", true);
+		liveMessagesInterval = config.get("liveMessagesInterval", 3);
+		liveMessagesInterval *= 1000;
+		long filesCacheSize = config.get("filesCacheSize", 50);
+		try {
+			fileCache = new FileCache(this, getDriverInstanceDataDir().resolve("files"),
+					filesCacheSize * 1024 * 1024);
+		} catch (IOException e) {
+			log.error("Error loading files cache", e);
+			return false;
+		}
+		int traceBufferSize = config.get("traceBufferSize", 4096);
+		if (traceBufferSize <= 0) {
+			tracer = null;
+		} else if (tracer == null || tracer.getCapacity() != traceBufferSize) {
+			tracer = new LatencyTracer(traceBufferSize);
+		}
+		int queueSize = config.get("queueSize", 100);
+		EventDispatcher previous = dispatcher;
+		if (queueSize > 0) {
+			List<String> dropTypes = config.get("dropTypes", Collections.singletonList("update"));
+			for (String type : dropTypes) {
+				if (!EventDispatcher.isType(type)) {
+					log.error("Invalid 'dropTypes' parameter: {}", type);
+					return false;
+				}
+			}
+			EventDispatcher.Policy policy;
+			try {
+				policy = EventDispatcher.Policy.parse(config.get("overflowPolicy", "block"));
+			} catch (IllegalArgumentException e) {
+				log.error("Invalid 'overflowPolicy' parameter", e);
+				return false;
+			}
+			// otherwise keep the events queued before the restart
+			if (previous == null || !previous.hasSettings(queueSize, policy, dropTypes)) {
+				dispatcher = new EventDispatcher(this, queueSize, policy, dropTypes);
+				if (previous != null) {
+					// the queued events are posted before the new ones
+					previous.handOver(dispatcher);
+				}
+			}
+		} else {
+			dispatcher = null;
+			if (previous != null) {
+				// the queued events are posted before the new ones
+				previous.awaitTermination();
+			}
+		}
 
 		try {
 			synchronized (authorizedUsers) {
@@ -122,19 +247,59 @@ public class Telegram extends Driver {
 			return false;
 		}
 
+		if (answerCallbackQueries) {
+			callbacksAnswerer = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, getId() + "-callbacks");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		if (dispatcher != null) {
+			dispatcher.start();
+		}
+		synchronized (liveMessages) {
+			for (LiveMessage m : liveMessages) {
+				m.resume();
+			}
+		}
+
 		return true;
 	}
 
 	@Override
 	protected boolean loop() throws InterruptedException {
+		if (!connected) {
+			try {
+				connect();
+			} catch (ResponseError e) {
+				log.error("Response error", e);
+				return false;
+			} catch (IOException | ParseException e) {
+				log.warn("Error reaching Telegram service, retrying in {} ms: {}", connectRetryDelay,
+						e.getMessage());
+				Thread.sleep(connectRetryDelay);
+				connectRetryDelay = Math.min(connectRetryDelay * 2, MAX_CONNECT_RETRY_DELAY);
+				return true;
+			}
+		}
+
 		if (pollUpdates) {
 			try {
+				long pollStart = System.nanoTime();
 				List<Update> updates = telegram.pollUpdates(offset, null, POLLING_TIMEOUT);
-				updates.forEach(update -> {
+				long received = System.nanoTime();
+				trace(0, LatencyTracer.Stage.POLL, received - pollStart);
+				LatencyTracer t = tracer;
+				for (Update update : updates) {
+					long traceId = t == null ? 0 : t.newTrace();
 					for (int i = 0; i < 3; i++) {
 						try {
-							processUpdate(update);
+							long start = System.nanoTime();
+							processUpdate(update, traceId, received);
+							trace(traceId, LatencyTracer.Stage.PROCESS, System.nanoTime() - start);
 							break;
+						} catch (InterruptedException e) {
+							throw e;
 						} catch (Exception e) {
 							log.error("Error processing update " + update, e);
 						}
@@ -144,7 +309,8 @@ public class Telegram extends Driver {
 					if (offset == null || updateId >= offset) {
 						offset = updateId + 1;
 					}
-				});
+				}
+				reportExpired();
 
 			} catch (IOException | ParseException e) {
 				log.error("Polling error", e);
@@ -160,6 +326,41 @@ public class Telegram extends Driver {
 		return true;
 	}
 
+	/**
+	 * Verifies the connection to the Telegram service and updates the cached
+	 * bot identity.
+	 * 
+	 * @throws IOException
+	 * @throws ParseException
+	 * @throws ResponseError
+	 */
+	private void connect() throws IOException, ParseException, ResponseError {
+		String name = telegram.getBotName(CONNECT_TIMEOUT);
+		connected = true;
+		log.info("Connected to bot: " + name);
+		if (!name.equals(botName)) {
+			botName = name;
+			try {
+				Files.createDirectories(botNameFile.getParent());
+				try (BufferedWriter writer = Files.newBufferedWriter(botNameFile)) {
+					writer.write(name);
+				}
+			} catch (IOException e) {
+				log.warn("Error caching bot name", e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the username of the bot.
+	 * 
+	 * @return the username of the bot, or {@code null} if the driver has never
+	 *         been able to reach the Telegram service
+	 */
+	public String getBotName() {
+		return botName;
+	}
+
 	/**
 	 * Requests all unconfirmed updates, waiting up to the specified timeout.
 	 * Returned updates are then set as 'confirmed' (i.e. received) to the Telegram
@@ -203,13 +404,22 @@ public class Telegram extends Driver {
 	}
 
 	/**
-	 * @param message
+	 * @param update
+	 * @param traceId
+	 * @param receivedNanos
 	 * @throws Exception
 	 */
-	private void processUpdate(Update update) throws Exception {
+	@SuppressWarnings("unchecked")
+	private void processUpdate(Update update, long traceId, long receivedNanos) throws Exception {
+		Map<String, Object> callbackQuery = (Map<String, Object>) update.get("callback_query");
+		if (callbackQuery != null) {
+			processCallbackQuery(callbackQuery);
+			return;
+		}
+
 		Message message = update.getMessage();
 		if (message == null) {
-			Bus.post(new TelegramUpdateEvent(this, update));
+			dispatch(new TelegramUpdateEvent(this, update));
 			return;
 		}
 
@@ -219,7 +429,8 @@ public class Telegram extends Driver {
 		long userId = user.getId();
 
 		if (System.currentTimeMillis() > date * 1000 + messagesTtl) {
-			log.warn("Message discarded from {}: {}", userId, text);
+			log.debug("Message expired from {}: {}", userId, text);
+			expiredMessages++;
 			return;
 		}
 
@@ -228,9 +439,9 @@ public class Telegram extends Driver {
 		if (botSecret != null) {
 			synchronized (authorizedUsers) {
 				if (!authorizedUsers.contains(userId)) {
-					if (text != null && text.startsWith("/addme ")) {
-						String secret = text.substring(7).trim();
-						if (secret.equals(botSecret)) {
+					CommandRouter.Match addme = BUILTIN_COMMANDS.match(text, botName);
+					if (addme != null && !addme.argsText.isEmpty()) {
+						if (addme.argsText.equals(botSecret)) {
 							addAuthorizedUser(userId, user.getFirstName());
 							sendMessage(userId, "OK");
 						} else {
@@ -245,7 +456,233 @@ public class Telegram extends Driver {
 			}
 		}
 
-		Bus.post(new TelegramMessageEvent(this, message));
+		CommandRouter.Match cmd = commands.match(text, botName);
+		if (cmd == null) {
+			cmd = configCommands.match(text, botName);
+		}
+		if (cmd != null) {
+			dispatch(new TelegramCommandEvent(this, message, cmd.command, cmd.argsText, cmd.args, traceId,
+					receivedNanos));
+			return;
+		}
+
+		dispatch(new TelegramMessageEvent(this, message, traceId, receivedNanos));
+	}
+
+	/**
+	 * Reports the messages of the last polled batch discarded for being older
+	 * than 'messagesTtl' with an overload event
+	 */
+	private void reportExpired() {
+		if (expiredMessages == 0) {
+			return;
+		}
+		if (dispatcher == null) {
+			postEvent(new TelegramOverloadEvent(this, 0, 0, expiredMessages));
+		} else {
+			dispatcher.expired(expiredMessages);
+		}
+		expiredMessages = 0;
+	}
+
+	/**
+	 * 
+	 * @param callbackQuery
+	 * @throws InterruptedException
+	 */
+	private void processCallbackQuery(Map<String, Object> callbackQuery) throws InterruptedException {
+		TelegramCallbackQueryEvent event = new TelegramCallbackQueryEvent(this, callbackQuery);
+		String queryId = event.getQueryId();
+		ExecutorService answerer = callbacksAnswerer;
+		if (answerer != null) {
+			// answer right away, in parallel with the event dispatching, to stop
+			// the client's spinner
+			answerer.execute(() -> {
+				try {
+					sendRequest(new AnswerCallbackQueryRequest(queryId, null, null));
+				} catch (Exception e) {
+					log.warn("Error answering callback query " + queryId, e);
+				}
+			});
+		}
+
+		long userId = event.getUserId();
+		log.debug("Callback query from {}: {}", userId, event.getData());
+		if (botSecret != null) {
+			synchronized (authorizedUsers) {
+				if (!authorizedUsers.contains(userId)) {
+					log.warn("Callback query from unauthorized user {}: {}", userId, event.getData());
+					return;
+				}
+			}
+		}
+
+		dispatch(event);
+	}
+
+	/**
+	 * 
+	 * @param event
+	 * @throws InterruptedException
+	 */
+	private void dispatch(TelegramEvent event) throws InterruptedException {
+		if (dispatcher == null) {
+			post(event);
+		} else {
+			dispatcher.dispatch(event);
+		}
+	}
+
+	/**
+	 * 
+	 * @param event
+	 */
+	private void post(TelegramEvent event) {
+		// read once, it can be replaced by onInit while the dispatcher is running
+		LatencyTracer t = tracer;
+		if (t == null) {
+			Bus.post(event);
+			return;
+		}
+		long traceId = 0;
+		long receivedNanos = 0;
+		Message message = null;
+		if (event instanceof TelegramMessageEvent) {
+			traceId = ((TelegramMessageEvent) event).getTraceId();
+			receivedNanos = ((TelegramMessageEvent) event).getReceivedNanos();
+			message = ((TelegramMessageEvent) event).getValue();
+		} else if (event instanceof TelegramCommandEvent) {
+			traceId = ((TelegramCommandEvent) event).getTraceId();
+			receivedNanos = ((TelegramCommandEvent) event).getReceivedNanos();
+			message = ((TelegramCommandEvent) event).getValue();
+		}
+		long start = System.nanoTime();
+		long chatId = 0;
+		long[] active = null;
+		if (traceId != 0) {
+			t.record(traceId, LatencyTracer.Stage.QUEUE, start - receivedNanos);
+			// replies sent while the handlers run are linked to this update
+			chatId = message.getChat().getId();
+			active = t.activate(chatId, traceId, receivedNanos);
+		}
+		try {
+			Bus.post(event);
+		} finally {
+			if (active != null) {
+				t.deactivate(chatId, active);
+			}
+			t.record(traceId, LatencyTracer.Stage.BUS, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * 
+	 * @param traceId
+	 * @param stage
+	 * @param nanos
+	 */
+	private void trace(long traceId, LatencyTracer.Stage stage, long nanos) {
+		LatencyTracer t = tracer;
+		if (t != null) {
+			t.record(traceId, stage, nanos);
+		}
+	}
+
+	/**
+	 * Returns the latency samples recorded by the driver, oldest first, one
+	 * per line.
+	 * <p>
+	 * Each line contains the sample timestamp, the trace ID of the update it
+	 * refers to ({@code 0} if not related to an update), the processing stage
+	 * and the duration in milliseconds. The stages are:
+	 * <ul>
+	 * <li>POLL: getUpdates long poll request</li>
+	 * <li>PROCESS: filtering and routing of the update in the polling
+	 * thread</li>
+	 * <li>QUEUE: from the receipt of the update to its delivery to the
+	 * Bus</li>
+	 * <li>BUS: Bus dispatching to the handlers</li>
+	 * <li>SEND: outbound request to the Telegram service</li>
+	 * <li>REPLY: from the receipt of the update to the completion of a reply
+	 * sent to the same chat while the update is being handled</li>
+	 * </ul>
+	 * 
+	 * @return the recorded latency samples, or an empty string if tracing is
+	 *         disabled
+	 */
+	public String dumpLatencyTraces() {
+		LatencyTracer t = tracer;
+		if (t == null) {
+			return "";
+		}
+		return t.dump();
+	}
+
+	/**
+	 * Returns, for each processing stage, the number of recorded samples and
+	 * the 50th, 90th and 99th percentiles and maximum of their durations in
+	 * milliseconds. See {@link #dumpLatencyTraces()} for the description of
+	 * the stages.
+	 * 
+	 * @return a map with the stage names as keys and maps with keys 'count',
+	 *         'p50', 'p90', 'p99' and 'max' as values
+	 */
+	public Map<String, Map<String, Double>> getLatencyStats() {
+		LatencyTracer t = tracer;
+		if (t == null) {
+			return Collections.emptyMap();
+		}
+		return t.stats();
+	}
+
+	/**
+	 * 
+	 * @param event
+	 */
+	void postEvent(TelegramEvent event) {
+		try {
+			post(event);
+		} catch (Exception e) {
+			log.error("Error posting event " + event, e);
+		}
+		if (event instanceof TelegramOverloadEvent) {
+			TelegramOverloadEvent o = (TelegramOverloadEvent) event;
+			log.warn("Updates discarded: {} dropped, {} coalesced, {} expired", o.getDropped(),
+					o.getCoalesced(), o.getExpired());
+		}
+	}
+
+	/**
+	 * Registers the specified commands. Messages starting with a registered
+	 * command, i.e. '{@code /command}' or '{@code /command@botname}', will
+	 * trigger a {@link TelegramCommandEvent} with ID
+	 * '{@code command.<name>}' instead of a {@link TelegramMessageEvent}.
+	 * <p>
+	 * Command names are case-insensitive and can only contain latin letters,
+	 * digits and underscores.
+	 * 
+	 * @param commands
+	 *            the command names, with or without the leading '/'
+	 * @throws IllegalArgumentException
+	 *             if any of the specified names is not a valid command name
+	 */
+	public void registerCommands(String... commands) {
+		this.commands.register(Arrays.asList(commands));
+	}
+
+	/**
+	 * Unregisters the specified command, previously registered with
+	 * {@link #registerCommands(String...)}. Messages starting with this
+	 * command will trigger a {@link TelegramMessageEvent} again, unless the
+	 * command is listed in the 'commands' configuration parameter.
+	 * 
+	 * @param command
+	 *            the command name, with or without the leading '/'
+	 * @throws IllegalArgumentException
+	 *             if the specified name is not a valid command name
+	 */
+	public void unregisterCommand(String command) {
+		commands.unregister(command);
 	}
 
 	/**
@@ -272,9 +709,50 @@ public class Telegram extends Driver {
 
 	@Override
 	protected void onQuit() {
+		if (dispatcher != null) {
+			dispatcher.stop();
+		}
+		if (callbacksAnswerer != null) {
+			callbacksAnswerer.shutdownNow();
+			callbacksAnswerer = null;
+		}
 		telegram = null;
 	}
 
+	/**
+	 * 
+	 * @return
+	 */
+	boolean isRunning() {
+		return telegram != null;
+	}
+
+	/**
+	 * 
+	 * @param message
+	 * @param e
+	 */
+	void logError(String message, Throwable e) {
+		log.error(message, e);
+	}
+
+	/**
+	 * 
+	 * @param message
+	 */
+	void logWarn(String message) {
+		log.warn(message);
+	}
+
+	/**
+	 * 
+	 * @param message
+	 * @param e
+	 */
+	void logDebug(String message, Throwable e) {
+		log.debug(message, e);
+	}
+
 	/**
 	 * 
 	 * @param req
@@ -284,10 +762,30 @@ public class Telegram extends Driver {
 	 * @throws ResponseError
 	 */
 	private <T> T sendRequest(Request req) throws IOException, ParseException, ResponseError {
-		if (telegram == null) {
+		return sendRequest(0, req);
+	}
+
+	/**
+	 * 
+	 * @param chatId
+	 * @param req
+	 * @return
+	 * @throws IOException
+	 * @throws ParseException
+	 * @throws ResponseError
+	 */
+	private <T> T sendRequest(long chatId, Request req) throws IOException, ParseException, ResponseError {
+		TelegramBot bot = telegram;
+		if (bot == null) {
 			throw new IOException("Driver quitted");
 		}
-		return telegram.sendRequest(req, REQUEST_TIMEOUT);
+		long start = System.nanoTime();
+		T res = bot.sendRequest(req, REQUEST_TIMEOUT);
+		LatencyTracer t = tracer;
+		if (t != null) {
+			t.recordSend(chatId, start);
+		}
+		return res;
 	}
 
 	/**
@@ -326,6 +824,25 @@ public class Telegram extends Driver {
 				return new ReplyKeyboardMarkup(kb, resizeKeyboard, oneTimeKeyboard, selective);
 			}
 		}
+		Object inlineKeyboard = map.get("inline_keyboard");
+		if (inlineKeyboard != null) {
+			Map<String, Object>[][] kb = null;
+			if (inlineKeyboard instanceof Map[][]) {
+				kb = (Map<String, Object>[][]) inlineKeyboard;
+			}
+			if (inlineKeyboard instanceof Map) {
+				kb = new Map[((Map<Object, Object>) inlineKeyboard).size()][];
+				int l = 0;
+				for (Object line : ((Map<Object, Object>) inlineKeyboard).values()) {
+					Collection<Map<String, Object>> buttons = ((Map<Object, Map<String, Object>>) line).values();
+					kb[l] = buttons.toArray(new Map[buttons.size()]);
+					l++;
+				}
+			}
+			if (kb != null) {
+				return new InlineKeyboardMarkup(kb);
+			}
+		}
 		Object hideKeyboard = map.get("hide_keyboard");
 		if (hideKeyboard == Boolean.TRUE) {
 			Boolean selective = (Boolean) map.get("selective");
@@ -384,6 +901,7 @@ public class Telegram extends Driver {
 	 *            Refer to:
 	 *            <ul>
 	 *            <li>https://core.telegram.org/bots/api#replykeyboardmarkup</li>
+	 *            <li>https://core.telegram.org/bots/api#inlinekeyboardmarkup</li>
 	 *            <li>https://core.telegram.org/bots/api#replykeyboardhide</li>
 	 *            <li>https://core.telegram.org/bots/api#forcereply</li>
 	 *            </ul>
@@ -404,6 +922,16 @@ public class Telegram extends Driver {
 	 *            replyMarkup['one_time_keyboard'] = true;
 	 *            </pre>
 	 * 
+	 *            Inline keyboard script example:
+	 * 
+	 *            <pre>
+	 *            var replyMarkup = {};
+	 *            replyMarkup['inline_keyboard'] = [[{text: "On", callback_data: "on"}, {text: "Off", callback_data: "off"}]];
+	 *            </pre>
+	 * 
+	 *            Presses of inline keyboard buttons trigger a
+	 *            {@link TelegramCallbackQueryEvent}.
+	 * 
 	 * @throws ResponseError
 	 *             if the server returned an error response
 	 * @throws ParseException
@@ -421,9 +949,255 @@ public class Telegram extends Driver {
 			}
 		} else {
 			log.debug("Sending message to {}: {}", chatId, text);
-			sendRequest(new SendMessageRequest(chatId, text, parseMode, disableWebPagePreview, replyToMessageId,
-					toReplyMarkup(replyMarkup)));
+			sendRequest(chatId, new SendMessageRequest(chatId, text, parseMode, disableWebPagePreview,
+					replyToMessageId, toReplyMarkup(replyMarkup)));
+		}
+	}
+
+	/**
+	 * 
+	 * @param chatId
+	 * @param text
+	 * @param parseMode
+	 * @return
+	 * @throws IOException
+	 * @throws ParseException
+	 * @throws ResponseError
+	 */
+	Message sendTextMessage(long chatId, String text, String parseMode)
+			throws IOException, ParseException, ResponseError {
+		log.debug("Sending message to {}: {}", chatId, text);
+		return sendRequest(chatId, new SendMessageRequest(chatId, text, parseMode, null, null, null));
+	}
+
+	/**
+	 * Edits the text of a message previously sent by the bot.
+	 * <p>
+	 * Refer to: https://core.telegram.org/bots/api#editmessagetext
+	 * 
+	 * @param chatId
+	 *            Unique identifier for the target chat
+	 * @param messageId
+	 *            Identifier of the message to edit
+	 * @param text
+	 *            New text of the message
+	 * @param parseMode
+	 *            "Markdown" or "HTML", or {@code null}
+	 * @throws ResponseError
+	 *             if the server returned an error response
+	 * @throws ParseException
+	 *             if an error occurs while parsing the server response
+	 * @throws IOException
+	 *             if an I/O exception occurs
+	 */
+	public void editMessageText(long chatId, long messageId, String text, String parseMode)
+			throws IOException, ParseException, ResponseError {
+		log.debug("Editing message {} in {}: {}", messageId, chatId, text);
+		sendRequest(chatId, new EditMessageTextRequest(chatId, messageId, text, parseMode, null, null));
+	}
+
+	/**
+	 * Creates a {@link LiveMessage} for the specified chat, updated at most
+	 * once per the interval set in the 'liveMessagesInterval' configuration
+	 * parameter.
+	 * 
+	 * @param chatId
+	 *            Unique identifier for the target chat
+	 * @return the created live message
+	 */
+	public LiveMessage createLiveMessage(long chatId) {
+		return createLiveMessage(chatId, null, null);
+	}
+
+	/**
+	 * Creates a {@link LiveMessage} for the specified chat.
+	 * <p>
+	 * Optional parameters can be set to {@code null} for default behaviors.
+	 * 
+	 * Script example:
+	 * 
+	 * <pre>
+	 * var temp = telegram.createLiveMessage(chatId, null, 5000);
+	 * ...
+	 * temp.update("Temperature: " + value + " °C");
+	 * </pre>
+	 * 
+	 * @param chatId
+	 *            Unique identifier for the target chat
+	 * @param parseMode
+	 *            "Markdown" or "HTML"
+	 * @param interval
+	 *            minimum interval in milliseconds between two updates of the
+	 *            message; defaults to the 'liveMessagesInterval' configuration
+	 *            parameter
+	 * @return the created live message
+	 */
+	public LiveMessage createLiveMessage(long chatId, String parseMode, Integer interval) {
+		if (chatId == 0) {
+			throw new IllegalArgumentException("Live messages require a target chat");
+		}
+		if (telegram == null) {
+			throw new IllegalStateException("Driver not running");
+		}
+		LiveMessage message = new LiveMessage(this, scheduler, chatId, parseMode,
+				interval == null ? liveMessagesInterval : interval);
+		liveMessages.add(message);
+		return message;
+	}
+
+	/**
+	 * Answers a callback query sent from an inline keyboard, optionally
+	 * showing a notification to the user.
+	 * <p>
+	 * Only usable if the 'answerCallbackQueries' configuration parameter is
+	 * set to {@code false}: otherwise queries are answered automatically with
+	 * an empty answer and, since Telegram accepts a single answer per query,
+	 * any further answer is rejected.
+	 * <p>
+	 * Refer to: https://core.telegram.org/bots/api#answercallbackquery
+	 * 
+	 * @param callbackQueryId
+	 *            Unique identifier for the query to be answered
+	 * @param text
+	 *            Text of the notification, or {@code null}
+	 * @param showAlert
+	 *            if {@code true}, an alert will be shown instead of a
+	 *            notification at the top of the chat screen
+	 * @throws ResponseError
+	 *             if the server returned an error response
+	 * @throws ParseException
+	 *             if an error occurs while parsing the server response
+	 * @throws IOException
+	 *             if an I/O exception occurs
+	 */
+	public void answerCallbackQuery(String callbackQueryId, String text, Boolean showAlert)
+			throws IOException, ParseException, ResponseError {
+		log.debug("Answering callback query {}: {}", callbackQueryId, text);
+		sendRequest(new AnswerCallbackQueryRequest(callbackQueryId, text, showAlert));
+	}
+
+	/**
+	 * 
+	 * @param fileId
+	 * @return
+	 * @throws IOException
+	 * @throws ParseException
+	 * @throws ResponseError
+	 */
+	Map<String, Object> getFile(String fileId) throws IOException, ParseException, ResponseError {
+		log.debug("Getting file {}", fileId);
+		return sendRequest(new GetFileRequest(fileId));
+	}
+
+	/**
+	 * Streams the content of the specified file from the Telegram server to
+	 * the target path. The download URL contains the bot token, so it is kept
+	 * out of the thrown exceptions.
+	 * 
+	 * @param filePath
+	 * @param target
+	 * @throws IOException
+	 */
+	void fetchFile(String filePath, Path target) throws IOException {
+		if (telegram == null) {
+			throw new IOException("Driver quitted");
+		}
+		HttpURLConnection conn = null;
+		try {
+			conn = (HttpURLConnection) new URL("https://api.telegram.org/file/bot" + token + "/" + filePath)
+					.openConnection();
+			conn.setConnectTimeout(REQUEST_TIMEOUT);
+			conn.setReadTimeout(REQUEST_TIMEOUT);
+			int code = conn.getResponseCode();
+			if (code != HttpURLConnection.HTTP_OK) {
+				throw new IOException("HTTP response code " + code);
+			}
+			try (InputStream in = conn.getInputStream()) {
+				Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			String message = String.valueOf(e.getMessage()).replace(token, "<token>");
+			throw new IOException("Error downloading file " + filePath + ": " + message);
+		} finally {
+			if (conn != null) {
+				conn.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Downloads a file received by the bot, e.g. a photo or a voice note, and
+	 * returns the path of the local copy.
+	 * <p>
+	 * Downloaded files are kept in a cache in the driver data directory whose
+	 * maximum size is set by the 'filesCacheSize' configuration parameter, so
+	 * subsequent calls for the same file do not download it again. The
+	 * returned file may be deleted when the cache is full, copy it elsewhere to
+	 * keep it.
+	 * <p>
+	 * Refer to: https://core.telegram.org/bots/api#getfile
+	 * 
+	 * @param fileId
+	 *            File identifier, e.g. the 'file_id' field of the 'voice'
+	 *            object of a received message
+	 * @return the path of the downloaded file
+	 * @throws ResponseError
+	 *             if the server returned an error response
+	 * @throws ParseException
+	 *             if an error occurs while parsing the server response
+	 * @throws IOException
+	 *             if an I/O exception occurs
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the download
+	 */
+	public String downloadFile(String fileId) throws IOException, ParseException, ResponseError, InterruptedException {
+		return getCachedFile(fileId).toString();
+	}
+
+	/**
+	 * Downloads a file received by the bot and writes its content to the
+	 * specified channel.
+	 * <p>
+	 * See {@link #downloadFile(String)} for details about caching.
+	 * 
+	 * @param fileId
+	 *            File identifier
+	 * @param target
+	 *            the channel to write the file content to
+	 * @throws ResponseError
+	 *             if the server returned an error response
+	 * @throws ParseException
+	 *             if an error occurs while parsing the server response
+	 * @throws IOException
+	 *             if an I/O exception occurs
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the download
+	 */
+	public void downloadFile(String fileId, WritableByteChannel target)
+			throws IOException, ParseException, ResponseError, InterruptedException {
+		try (FileChannel in = FileChannel.open(getCachedFile(fileId), StandardOpenOption.READ)) {
+			long pos = 0;
+			long size = in.size();
+			while (pos < size) {
+				pos += in.transferTo(pos, size - pos, target);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param fileId
+	 * @return
+	 * @throws IOException
+	 * @throws ParseException
+	 * @throws ResponseError
+	 * @throws InterruptedException
+	 */
+	private Path getCachedFile(String fileId) throws IOException, ParseException, ResponseError, InterruptedException {
+		if (fileCache == null) {
+			throw new IOException("Driver not running");
 		}
+		return fileCache.get(fileId);
 	}
 
 	/**
@@ -446,7 +1220,7 @@ public class Telegram extends Driver {
 	 */
 	public void sendChatAction(long chatId, String action) throws IOException, ParseException, ResponseError {
 		log.debug("Sending chat action to {}: {}", chatId, action);
-		sendRequest(new SendChatActionRequest(chatId, action));
+		sendRequest(chatId, new SendChatActionRequest(chatId, action));
 	}
 
 	/**
@@ -502,7 +1276,7 @@ public class Telegram extends Driver {
 	public void sendPhoto(long chatId, String path, String caption, Long replyToMessageId,
 			Map<String, Object> replyMarkup) throws IOException, ParseException, ResponseError {
 		log.debug("Sending image to {}: {}", chatId, path);
-		sendRequest(
+		sendRequest(chatId,
 				new SendPhotoRequest(chatId, Paths.get(path), caption, replyToMessageId, toReplyMarkup(replyMarkup)));
 	}
 
@@ -563,8 +1337,8 @@ public class Telegram extends Driver {
 	public void sendAudio(long chatId, String path, Integer duration, String performer, String title,
 			Long replyToMessageId, Map<String, Object> replyMarkup) throws IOException, ParseException, ResponseError {
 		log.debug("Sending audio to {}: {}", chatId, path);
-		sendRequest(new SendAudioRequest(chatId, Paths.get(path), duration, performer, title, replyToMessageId,
-				toReplyMarkup(replyMarkup)));
+		sendRequest(chatId, new SendAudioRequest(chatId, Paths.get(path), duration, performer, title,
+				replyToMessageId, toReplyMarkup(replyMarkup)));
 	}
 
 	/**
@@ -614,7 +1388,8 @@ public class Telegram extends Driver {
 	public void sendDocument(long chatId, String path, Long replyToMessageId, Map<String, Object> replyMarkup)
 			throws IOException, ParseException, ResponseError {
 		log.debug("Sending document to {}: {}", chatId, path);
-		sendRequest(new SendDocumentRequest(chatId, Paths.get(path), replyToMessageId, toReplyMarkup(replyMarkup)));
+		sendRequest(chatId,
+				new SendDocumentRequest(chatId, Paths.get(path), replyToMessageId, toReplyMarkup(replyMarkup)));
 	}
 
 }
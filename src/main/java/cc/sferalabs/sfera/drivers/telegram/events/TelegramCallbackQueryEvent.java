@@ -0,0 +1,155 @@
+/*-
+ * +======================================================================+
+ * Telegram
+ * ---
+ * Copyright (C) 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.drivers.telegram.events;
+
+import java.util.Map;
+
+import cc.sferalabs.sfera.drivers.telegram.Telegram;
+import cc.sferalabs.sfera.events.BaseEvent;
+
+/**
+ * Event triggered when a button of an inline keyboard is pressed.
+ * <p>
+ * Unless the 'answerCallbackQueries' configuration parameter is set to
+ * {@code false}, the driver sends an empty answer to the query as soon as it
+ * is received, in parallel with the triggering of this event, so the answer
+ * may be still in flight while the event is handled. Since Telegram accepts a
+ * single answer per query, in this case handlers cannot show a notification
+ * with {@link Telegram#answerCallbackQuery(String, String, Boolean)}.
+ * 
+ * @sfera.event_id callback
+ * @sfera.event_val callback_query_obj see getValue()
+ * @sfera.event_val_simple callback_data see getSimpleValue()
+ * 
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+public class TelegramCallbackQueryEvent extends BaseEvent implements TelegramEvent {
+
+	private final Map<String, Object> query;
+
+	/**
+	 * 
+	 * @param source
+	 *            source driver
+	 * @param query
+	 *            received callback query
+	 */
+	public TelegramCallbackQueryEvent(Telegram source, Map<String, Object> query) {
+		super(source, "callback");
+		this.query = query;
+	}
+
+	/**
+	 * Returns the map representing the callback query that triggered this
+	 * event.
+	 * <p>
+	 * Refer to: https://core.telegram.org/bots/api#callbackquery
+	 * 
+	 * @return the map representing the callback query that triggered this
+	 *         event
+	 */
+	@Override
+	public Map<String, Object> getValue() {
+		return query;
+	}
+
+	/**
+	 * Returns the 'callback_data' associated with the pressed button.
+	 * 
+	 * @return the data associated with the pressed button, or {@code null} if
+	 *         not present
+	 */
+	@Override
+	public String getSimpleValue() {
+		return getData();
+	}
+
+	/**
+	 * Returns the unique identifier of the callback query.
+	 * 
+	 * @return the unique identifier of the callback query
+	 */
+	public String getQueryId() {
+		return (String) query.get("id");
+	}
+
+	/**
+	 * Returns the 'callback_data' associated with the pressed button.
+	 * 
+	 * @return the data associated with the pressed button, or {@code null} if
+	 *         not present
+	 */
+	public String getData() {
+		return (String) query.get("data");
+	}
+
+	/**
+	 * Returns the identifier of the user who pressed the button.
+	 * 
+	 * @return the identifier of the user who pressed the button
+	 */
+	@SuppressWarnings("unchecked")
+	public long getUserId() {
+		Map<String, Object> from = (Map<String, Object>) query.get("from");
+		return ((Number) from.get("id")).longValue();
+	}
+
+	/**
+	 * Returns the identifier of the chat of the message with the pressed
+	 * button.
+	 * 
+	 * @return the identifier of the chat, or {@code null} if the message is
+	 *         not available
+	 */
+	@SuppressWarnings("unchecked")
+	public Long getChatId() {
+		Map<String, Object> message = (Map<String, Object>) query.get("message");
+		if (message == null) {
+			return null;
+		}
+		Map<String, Object> chat = (Map<String, Object>) message.get("chat");
+		return ((Number) chat.get("id")).longValue();
+	}
+
+	/**
+	 * Returns the identifier of the message with the pressed button.
+	 * 
+	 * @return the identifier of the message, or {@code null} if the message is
+	 *         not available
+	 */
+	@SuppressWarnings("unchecked")
+	public Long getMessageId() {
+		Map<String, Object> message = (Map<String, Object>) query.get("message");
+		if (message == null) {
+			return null;
+		}
+		return ((Number) message.get("message_id")).longValue();
+	}
+
+}
@@ -0,0 +1,190 @@
+/*-
+ * +======================================================================+
+ * Telegram
+ * ---
+ * Copyright (C) 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ *
+ */
+package cc.sferalabs.sfera.drivers.telegram.events;
+
+import cc.sferalabs.libs.telegram.bot.api.types.Message;
+import cc.sferalabs.sfera.drivers.telegram.Telegram;
+import cc.sferalabs.sfera.events.BaseEvent;
+
+/**
+ * Event triggered when the Telegram Bot receives a message starting with one
+ * of the registered commands.
+ *
+ * @sfera.event_id command.&lt;name&gt;
+ * @sfera.event_val message_obj see getValue()
+ * @sfera.event_val_simple arguments_text see getSimpleValue()
+ *
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+public class TelegramCommandEvent extends BaseEvent implements TelegramEvent {
+
+	private final Message message;
+	private final String command;
+	private final String argsText;
+	private final String[] args;
+	private final long traceId;
+	private final long receivedNanos;
+
+	/**
+	 *
+	 * @param source
+	 *            source driver
+	 * @param message
+	 *            received message
+	 * @param command
+	 *            the command name, without the leading '/'
+	 * @param argsText
+	 *            the message text following the command
+	 * @param args
+	 *            the whitespace-separated arguments following the command
+	 */
+	public TelegramCommandEvent(Telegram source, Message message, String command, String argsText,
+			String[] args) {
+		this(source, message, command, argsText, args, 0, System.nanoTime());
+	}
+
+	/**
+	 *
+	 * @param source
+	 *            source driver
+	 * @param message
+	 *            received message
+	 * @param command
+	 *            the command name, without the leading '/'
+	 * @param argsText
+	 *            the message text following the command
+	 * @param args
+	 *            the whitespace-separated arguments following the command
+	 * @param traceId
+	 *            ID used to link this event to the latency samples recorded by
+	 *            the driver
+	 * @param receivedNanos
+	 *            value of {@link System#nanoTime()} when the message was
+	 *            received
+	 */
+	public TelegramCommandEvent(Telegram source, Message message, String command, String argsText,
+			String[] args, long traceId, long receivedNanos) {
+		super(source, "command." + command);
+		this.message = message;
+		this.command = command;
+		this.argsText = argsText;
+		this.args = args;
+		this.traceId = traceId;
+		this.receivedNanos = receivedNanos;
+	}
+
+	/**
+	 * Returns the {@link Message} object representing the message that
+	 * triggered this event
+	 *
+	 * @return the {@link Message} object representing the message that
+	 *         triggered this event
+	 */
+	@Override
+	public Message getValue() {
+		return message;
+	}
+
+	/**
+	 * Returns the text following the command in the message that triggered
+	 * this event.
+	 *
+	 * @return the text following the command, or an empty string if there
+	 *         were no arguments
+	 */
+	@Override
+	public String getSimpleValue() {
+		return argsText;
+	}
+
+	/**
+	 * Returns the name of the command, without the leading '/' and the bot
+	 * name suffix.
+	 *
+	 * @return the name of the command
+	 */
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * Returns the whitespace-separated arguments following the command.
+	 *
+	 * @return the arguments following the command
+	 */
+	public String[] getArgs() {
+		return args.clone();
+	}
+
+	/**
+	 * Returns the argument at the specified position.
+	 *
+	 * @param index
+	 *            index of the argument
+	 * @return the argument at the specified position, or {@code null} if
+	 *         there are not enough arguments
+	 */
+	public String getArg(int index) {
+		if (index < 0 || index >= args.length) {
+			return null;
+		}
+		return args[index];
+	}
+
+	/**
+	 * Returns the number of arguments following the command.
+	 *
+	 * @return the number of arguments
+	 */
+	public int getArgsCount() {
+		return args.length;
+	}
+
+	/**
+	 * Returns the ID linking this event to the latency samples recorded by the
+	 * driver.
+	 *
+	 * @return the trace ID, or {@code 0} if not traced
+	 */
+	public long getTraceId() {
+		return traceId;
+	}
+
+	/**
+	 * Returns the value of {@link System#nanoTime()} when the message was
+	 * received, to be used for computing elapsed times.
+	 *
+	 * @return the value of {@link System#nanoTime()} when the message was
+	 *         received
+	 */
+	public long getReceivedNanos() {
+		return receivedNanos;
+	}
+
+}
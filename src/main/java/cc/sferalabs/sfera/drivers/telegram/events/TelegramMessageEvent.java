@@ -44,6 +44,8 @@ import cc.sferalabs.sfera.events.BaseEvent;
 public class TelegramMessageEvent extends BaseEvent implements TelegramEvent {
 
 	private final Message message;
+	private final long traceId;
+	private final long receivedNanos;
 
 	/**
 	 * 
@@ -53,8 +55,27 @@ public class TelegramMessageEvent extends BaseEvent implements TelegramEvent {
 	 *            received message
 	 */
 	public TelegramMessageEvent(Telegram source, Message message) {
+		this(source, message, 0, System.nanoTime());
+	}
+
+	/**
+	 * 
+	 * @param source
+	 *            source driver
+	 * @param message
+	 *            received message
+	 * @param traceId
+	 *            ID used to link this event to the latency samples recorded by
+	 *            the driver
+	 * @param receivedNanos
+	 *            value of {@link System#nanoTime()} when the message was
+	 *            received
+	 */
+	public TelegramMessageEvent(Telegram source, Message message, long traceId, long receivedNanos) {
 		super(source, "message");
 		this.message = message;
+		this.traceId = traceId;
+		this.receivedNanos = receivedNanos;
 	}
 
 	/**
@@ -80,4 +101,25 @@ public class TelegramMessageEvent extends BaseEvent implements TelegramEvent {
 		return message.getText();
 	}
 
+	/**
+	 * Returns the ID linking this event to the latency samples recorded by the
+	 * driver.
+	 * 
+	 * @return the trace ID, or {@code 0} if not traced
+	 */
+	public long getTraceId() {
+		return traceId;
+	}
+
+	/**
+	 * Returns the value of {@link System#nanoTime()} when the message was
+	 * received, to be used for computing elapsed times.
+	 * 
+	 * @return the value of {@link System#nanoTime()} when the message was
+	 *         received
+	 */
+	public long getReceivedNanos() {
+		return receivedNanos;
+	}
+
 }
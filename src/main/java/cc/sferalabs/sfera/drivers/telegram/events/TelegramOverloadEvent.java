@@ -0,0 +1,113 @@
+/*-
+ * +======================================================================+
+ * Telegram
+ * ---
+ * Copyright (C) 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ *
+ */
+package cc.sferalabs.sfera.drivers.telegram.events;
+
+import cc.sferalabs.sfera.drivers.telegram.Telegram;
+import cc.sferalabs.sfera.events.BaseEvent;
+
+/**
+ * Event triggered when the driver discards received updates because the event
+ * queue is full, according to the configured overflow policy, or because they
+ * are older than the configured time-to-live.
+ *
+ * @sfera.event_id overload
+ * @sfera.event_val shed_count number of updates discarded since the previous
+ *                  overload event
+ *
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+public class TelegramOverloadEvent extends BaseEvent implements TelegramEvent {
+
+	private final long dropped;
+	private final long coalesced;
+	private final long expired;
+
+	/**
+	 *
+	 * @param source
+	 *            source driver
+	 * @param dropped
+	 *            number of updates dropped since the previous overload event
+	 * @param coalesced
+	 *            number of duplicate messages merged since the previous
+	 *            overload event
+	 * @param expired
+	 *            number of messages discarded for being older than the
+	 *            configured time-to-live since the previous overload event
+	 */
+	public TelegramOverloadEvent(Telegram source, long dropped, long coalesced, long expired) {
+		super(source, "overload");
+		this.dropped = dropped;
+		this.coalesced = coalesced;
+		this.expired = expired;
+	}
+
+	/**
+	 * Returns the total number of updates discarded since the previous overload
+	 * event
+	 *
+	 * @return the total number of updates discarded since the previous overload
+	 *         event
+	 */
+	@Override
+	public Long getValue() {
+		return dropped + coalesced + expired;
+	}
+
+	/**
+	 * Returns the number of updates dropped since the previous overload event
+	 *
+	 * @return the number of updates dropped since the previous overload event
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Returns the number of duplicate messages merged into an already queued
+	 * one since the previous overload event
+	 *
+	 * @return the number of duplicate messages merged since the previous
+	 *         overload event
+	 */
+	public long getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * Returns the number of messages discarded for being older than the
+	 * configured time-to-live since the previous overload event
+	 *
+	 * @return the number of messages expired since the previous overload event
+	 */
+	public long getExpired() {
+		return expired;
+	}
+
+}
@@ -0,0 +1,57 @@
+/*-
+ * +======================================================================+
+ * Telegram
+ * ---
+ * Copyright (C) 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.drivers.telegram.requests;
+
+import cc.sferalabs.libs.telegram.bot.api.requests.Request;
+
+/**
+ * Request for answering a callback query sent from an inline keyboard.
+ * <p>
+ * Refer to: https://core.telegram.org/bots/api#answercallbackquery
+ * 
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+public class AnswerCallbackQueryRequest extends Request {
+
+	/**
+	 * Optional parameters can be set to {@code null} for default behaviors.
+	 * 
+	 * @param callbackQueryId
+	 *            Unique identifier for the query to be answered
+	 * @param text
+	 *            Text of the notification to show to the user
+	 * @param showAlert
+	 *            if {@code true}, an alert will be shown instead of a
+	 *            notification at the top of the chat screen
+	 */
+	public AnswerCallbackQueryRequest(String callbackQueryId, String text, Boolean showAlert) {
+		super("answerCallbackQuery");
+		addParameter("callback_query_id", callbackQueryId);
+		addParameter("text", text);
+		addParameter("show_alert", showAlert);
+	}
+
+}
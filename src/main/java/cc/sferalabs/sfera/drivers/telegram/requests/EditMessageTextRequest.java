@@ -0,0 +1,67 @@
+/*-
+ * +======================================================================+
+ * Telegram
+ * ---
+ * Copyright (C) 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.drivers.telegram.requests;
+
+import cc.sferalabs.libs.telegram.bot.api.requests.Request;
+import cc.sferalabs.libs.telegram.bot.api.types.ReplyMarkup;
+
+/**
+ * Request for editing the text of a message previously sent by the bot.
+ * <p>
+ * Refer to: https://core.telegram.org/bots/api#editmessagetext
+ * 
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+public class EditMessageTextRequest extends Request {
+
+	/**
+	 * Optional parameters can be set to {@code null} for default behaviors.
+	 * 
+	 * @param chatId
+	 *            Unique identifier for the target chat
+	 * @param messageId
+	 *            Identifier of the message to edit
+	 * @param text
+	 *            New text of the message
+	 * @param parseMode
+	 *            "Markdown" or "HTML"
+	 * @param disableWebPagePreview
+	 *            if {@code true}, disables link previews for links in this message
+	 * @param replyMarkup
+	 *            inline keyboard to attach to the message
+	 */
+	public EditMessageTextRequest(long chatId, long messageId, String text, String parseMode,
+			Boolean disableWebPagePreview, ReplyMarkup replyMarkup) {
+		super("editMessageText");
+		addParameter("chat_id", chatId);
+		addParameter("message_id", messageId);
+		addParameter("text", text);
+		addParameter("parse_mode", parseMode);
+		addParameter("disable_web_page_preview", disableWebPagePreview);
+		addParameter("reply_markup", replyMarkup);
+	}
+
+}
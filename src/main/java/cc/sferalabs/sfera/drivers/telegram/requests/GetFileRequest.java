@@ -0,0 +1,50 @@
+/*-
+ * +======================================================================+
+ * Telegram
+ * ---
+ * Copyright (C) 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.drivers.telegram.requests;
+
+import cc.sferalabs.libs.telegram.bot.api.requests.Request;
+
+/**
+ * Request for getting basic info about a file and preparing it for
+ * downloading.
+ * <p>
+ * Refer to: https://core.telegram.org/bots/api#getfile
+ * 
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+public class GetFileRequest extends Request {
+
+	/**
+	 * 
+	 * @param fileId
+	 *            File identifier to get info about
+	 */
+	public GetFileRequest(String fileId) {
+		super("getFile");
+		addParameter("file_id", fileId);
+	}
+
+}
@@ -0,0 +1,73 @@
+/*-
+ * +======================================================================+
+ * Telegram
+ * ---
+ * Copyright (C) 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.drivers.telegram.types;
+
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import cc.sferalabs.libs.telegram.bot.api.types.ReplyMarkup;
+
+/**
+ * Inline keyboard that appears right next to the message it belongs to.
+ * <p>
+ * Refer to: https://core.telegram.org/bots/api#inlinekeyboardmarkup
+ * 
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+public class InlineKeyboardMarkup extends ReplyMarkup {
+
+	/**
+	 * 
+	 * @param keyboard
+	 *            rows of buttons, each button being a map with the 'text' key
+	 *            and one of the 'callback_data', 'url' or
+	 *            'switch_inline_query' keys
+	 */
+	@SuppressWarnings("unchecked")
+	public InlineKeyboardMarkup(Map<String, Object>[][] keyboard) {
+		JSONArray rows = new JSONArray();
+		for (Map<String, Object>[] line : keyboard) {
+			JSONArray row = new JSONArray();
+			for (Map<String, Object> button : line) {
+				if (button.get("text") == null) {
+					throw new IllegalArgumentException("Inline keyboard button without 'text'");
+				}
+				JSONObject b = new JSONObject();
+				for (Map.Entry<String, Object> e : button.entrySet()) {
+					if (e.getValue() != null) {
+						b.put(e.getKey(), e.getValue());
+					}
+				}
+				row.add(b);
+			}
+			rows.add(row);
+		}
+		put("inline_keyboard", rows);
+	}
+
+}